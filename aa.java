@@ -126,43 +126,177 @@ public class ProductApp {
 
 //Chained Service
 //Booking involves three dependent services — Booking → Payment → Notification.
+//Payment is on the critical path; notifications are queued and delivered in batches in the background.
 
 BookingService (port 8085)
 package com.example.booking;
+import com.example.common.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
 
 @SpringBootApplication
 @RestController
 @RequestMapping("/booking")
 public class BookingApp {
-    RestTemplate rest = new RestTemplate();
+    // Timeouts keep a hung downstream from holding the first request (and its waiting duplicates) forever
+    RestTemplate rest = new RestTemplateBuilder().setConnectTimeout(Duration.ofSeconds(2)).setReadTimeout(Duration.ofSeconds(10)).build();
+    NotificationDispatcher notifications = new NotificationDispatcher(rest, "http://localhost:8087/notify/bulk");
+    final IdempotencyStore store;
+    BookingApp(@Value("${idempotency.spill-file:}") String spillFile) throws IOException {
+        store = new IdempotencyStore(10_000, 10 * 60_000, 30_000, spillFile);
+    }
     public static void main(String[] args){ SpringApplication.run(BookingApp.class,args); }
 
+    // A retried request with the same Idempotency-Key gets the first result instead of paying/notifying again
     @GetMapping("/create")
-    String createBooking() {
-        String payment = rest.getForObject("http://localhost:8086/payment/pay", String.class);
-        String notify = rest.getForObject("http://localhost:8087/notify/send", String.class);
-        return "🎟️ Booking Created → " + payment + " → " + notify;
+    String createBooking(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String key) {
+        return store.execute(key, () -> {
+            HttpHeaders headers = new HttpHeaders();
+            if (key != null) headers.set(IdempotencyStore.HEADER, key + ":pay");
+            // Push back before charging: once paid, the booking must succeed
+            if (!notifications.tryReserve())
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Notification backlog full, try again later");
+            String payment;
+            try {
+                payment = rest.exchange("http://localhost:8086/payment/pay", HttpMethod.GET, new HttpEntity<>(headers), String.class).getBody();
+            } catch (RuntimeException | Error e) {
+                notifications.cancelReservation();
+                throw e;
+            }
+            // The email is not needed to confirm the booking, so it leaves the critical path
+            notifications.submit("Booking confirmed: " + payment);
+            return "🎟️ Booking Created → " + payment + " → 📩 Email Confirmation Queued";
+        });
+    }
+
+    @PreDestroy
+    void stop() { notifications.close(); }
+}
+
+//NotificationDispatcher.java
+package com.example.booking;
+import org.springframework.web.client.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*Bounded queue + one background thread that posts notifications to /notify/bulk in batches.
+Callers reserve queue space before doing work they can't undo (the payment), so submit() never
+blocks or fails afterwards. A batch is retried with exponential backoff only on transient failures
+(5xx, I/O) and at most MAX_ATTEMPTS times; anything else goes to the dead-letter log so the queue keeps moving.*/
+public class NotificationDispatcher implements AutoCloseable {
+    static final int CAPACITY = 10_000, MAX_BATCH = 100, MAX_ATTEMPTS = 5;
+    static final long MAX_BACKOFF_MS = 5000;
+
+    final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    final Semaphore slots = new Semaphore(CAPACITY);    // queued + reserved <= CAPACITY
+    final RestTemplate rest;
+    final String bulkUrl;
+    final Thread worker;
+    volatile boolean running = true;
+
+    public NotificationDispatcher(RestTemplate rest, String bulkUrl) {
+        this.rest = rest;
+        this.bulkUrl = bulkUrl;
+        this.worker = new Thread(this::run, "notification-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Non-blocking; false means the backlog is full (or we are shutting down) and the caller should back off
+    public boolean tryReserve() { return running && slots.tryAcquire(); }
+
+    public void cancelReservation() { slots.release(); }
+
+    // Uses a slot taken by tryReserve(), so there is always room
+    public void submit(String message) {
+        if (!queue.offer(message)) deadLetter(List.of(message), "queue full");
+    }
+
+    void run() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                slots.release(batch.size());
+                deliver(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                deadLetter(batch, "shutdown");
+                deadLetter(new ArrayList<>(queue), "shutdown");
+                return;
+            }
+        }
+    }
+
+    void deliver(List<String> batch) throws InterruptedException {
+        long backoff = 100;
+        for (int attempt = 1; ; attempt++, backoff = Math.min(backoff * 2, MAX_BACKOFF_MS)) {
+            try {
+                rest.postForObject(bulkUrl, batch, String.class);
+                return;
+            } catch (HttpServerErrorException | ResourceAccessException e) {    // 5xx or I/O: worth another try
+                if (attempt == MAX_ATTEMPTS) { deadLetter(batch, "gave up after " + attempt + " attempts: " + e.getMessage()); return; }
+                System.out.println("⚠️ Notification batch of " + batch.size() + " failed, retrying in " + backoff + " ms");
+                Thread.sleep(backoff);
+            } catch (RuntimeException e) {                                       // 4xx and the like won't get better
+                deadLetter(batch, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    void deadLetter(List<String> messages, String reason) {
+        for (String m : messages) System.out.println("☠️ Notification dead-lettered (" + reason + "): " + m);
+    }
+
+    // Stops taking reservations, lets the worker flush the queue for a few seconds, then interrupts it
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(5000);
+            if (worker.isAlive()) worker.interrupt();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
 
 
 //PaymentService (port 8086)
 package com.example.payment;
+import com.example.common.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
 import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
 
 @SpringBootApplication
 @RestController
 public class PaymentApp {
+    final IdempotencyStore store;
+    PaymentApp(@Value("${idempotency.spill-file:}") String spillFile) throws IOException {
+        store = new IdempotencyStore(10_000, 10 * 60_000, 30_000, spillFile);
+    }
     public static void main(String[] args){ SpringApplication.run(PaymentApp.class,args); }
 
     @GetMapping("/payment/pay")
-    String pay() { return "💳 Payment Successful"; }
+    String pay(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String key) {
+        return store.execute(key, () -> "💳 Payment Successful");
+    }
 }
 
 //NotificationService (port 8087)
@@ -170,6 +304,7 @@ package com.example.notify;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
 import org.springframework.web.bind.annotation.*;
+import java.util.List;
 
 @SpringBootApplication
 @RestController
@@ -178,6 +313,150 @@ public class NotificationApp {
 
     @GetMapping("/notify/send")
     String send(){ return "📩 Email Confirmation Sent"; }
+
+    @PostMapping("/notify/bulk")
+    String sendBulk(@RequestBody List<String> messages){ return "📩 " + messages.size() + " Email Confirmations Sent"; }
+}
+
+//IdempotencyStore.java — shared by BookingApp, PaymentApp and OrderApplication
+package com.example.common;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*Remembers the result of each Idempotency-Key for ttlMs, keeping about maxEntries in memory.
+The first request for a key runs the work; concurrent duplicates wait (up to waitTimeoutMs) on the
+same future and later duplicates get the stored result. Failures are not stored, so a retry runs again.
+With a spill file, completed entries evicted for capacity go to a memory-mapped slot table instead of
+being lost; entries that are still running are never evicted.*/
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    static final int MAX_REQUEUES = 16;    // running entries skipped per evict() before giving up for now
+    record Entry(CompletableFuture<String> result, long expiresAt) {}
+    record Queued(String key, Entry entry) {}
+
+    final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    final ConcurrentLinkedQueue<Queued> insertionOrder = new ConcurrentLinkedQueue<>();
+    final int maxEntries;
+    final long ttlMs, waitTimeoutMs;
+    final Spill spill;    // null when no spill file is configured
+
+    public IdempotencyStore(int maxEntries, long ttlMs, long waitTimeoutMs, String spillFile) throws IOException {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.spill = (spillFile == null || spillFile.isEmpty()) ? null : new Spill(Path.of(spillFile));
+    }
+
+    public String execute(String key, Supplier<String> work) {
+        if (key == null) return work.get();
+        long now = System.currentTimeMillis();
+        Entry fresh = new Entry(new CompletableFuture<>(), now + ttlMs);
+        Entry e = entries.compute(key, (k, old) -> (old == null || old.expiresAt() < now) ? fresh : old);
+        if (e != fresh) return await(e);
+
+        Queued queued = new Queued(key, fresh);
+        insertionOrder.add(queued);
+        try {
+            // Spilled entries are written before they leave the map, so a miss here is a real first request
+            String result = spill == null ? null : spill.get(key, now);
+            if (result == null) result = work.get();
+            fresh.result().complete(result);
+            return result;
+        } catch (Throwable t) {
+            // Forget the key so a retry runs again, and hand waiters the same failure (e.g. a 503 stays a 503)
+            entries.remove(key, fresh);
+            insertionOrder.remove(queued);
+            fresh.result().completeExceptionally(t);
+            throw t;
+        } finally {
+            evict(now);
+        }
+    }
+
+    String await(Entry e) {
+        try {
+            return e.result().get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still in progress");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error err) throw err;
+            throw ex.getCause() instanceof RuntimeException r ? r : new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Oldest first: stale and expired entries are dropped, completed ones over capacity are spilled
+    // (if enabled) and only then removed; running ones go to the back of the queue.
+    void evict(long now) {
+        Queued q;
+        int requeued = 0;
+        while ((q = insertionOrder.peek()) != null) {
+            Entry e = q.entry();
+            boolean stale = entries.get(q.key()) != e, expired = e.expiresAt() < now;
+            if (!stale && !expired && entries.size() <= maxEntries) return;
+            if (!insertionOrder.remove(q)) continue;    // another thread took it
+            if (stale) continue;
+            if (!expired && !e.result().isDone()) {
+                insertionOrder.add(q);
+                if (++requeued >= MAX_REQUEUES) return;
+                continue;
+            }
+            if (!expired && spill != null && !e.result().isCompletedExceptionally())
+                spill.put(q.key(), e.result().join(), e.expiresAt());
+            entries.remove(q.key(), e);
+        }
+    }
+
+    // Fixed-size hash table in a mapped file; a colliding key simply overwrites the slot.
+    // Slot layout: expiresAt(8) | keyLen(2) | valueLen(2) | key | value
+    static class Spill {
+        static final int SLOT = 512, SLOTS = 1 << 16;    // 32 MB
+        final MappedByteBuffer buf;
+        final ReentrantLock[] locks = new ReentrantLock[64];
+
+        Spill(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, (long) SLOT * SLOTS);
+            }
+            for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+        }
+
+        void put(String key, String value, long expiresAt) {
+            byte[] k = key.getBytes(UTF_8), v = value.getBytes(UTF_8);
+            if (12 + k.length + v.length > SLOT) return;    // too big to spill, just forget it
+            int slot = slot(key);
+            ReentrantLock lock = locks[slot % locks.length];
+            lock.lock();
+            try {
+                buf.slice(slot * SLOT, SLOT).putLong(expiresAt).putShort((short) k.length).putShort((short) v.length).put(k).put(v);
+            } finally { lock.unlock(); }
+        }
+
+        String get(String key, long now) {
+            int slot = slot(key);
+            ReentrantLock lock = locks[slot % locks.length];
+            lock.lock();
+            try {
+                ByteBuffer b = buf.slice(slot * SLOT, SLOT);
+                if (b.getLong() < now) return null;          // empty (0) or expired
+                byte[] k = new byte[b.getShort()], v = new byte[b.getShort()];
+                b.get(k).get(v);
+                return key.equals(new String(k, UTF_8)) ? new String(v, UTF_8) : null;
+            } finally { lock.unlock(); }
+        }
+
+        static int slot(String key) { return (key.hashCode() & 0x7fffffff) % SLOTS; }
+    }
 }
 
 
@@ -185,29 +464,66 @@ public class NotificationApp {
 //A DashboardService fetches info from multiple microservices and merges results.
 
 //Dependencies
+<dependency>
+  <groupId>com.fasterxml.jackson.dataformat</groupId>
+  <artifactId>jackson-dataformat-cbor</artifactId>
+</dependency>
 
 //DashboardService (port 8088)
 package com.example.dashboard;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import reactor.core.publisher.Mono;
+import java.util.List;
 
 @SpringBootApplication
 @RestController
 @RequestMapping("/dashboard")
 public class DashboardApp {
     WebClient client = WebClient.create();
+    record Summary(String orders, String stock) {}
+    static final ObjectMapper JSON = new ObjectMapper(), CBOR = new CBORMapper();
     public static void main(String[] args){ SpringApplication.run(DashboardApp.class,args); }
 
     @GetMapping("/summary")
     Mono<String> summary() {
-        Mono<String> orders = client.get().uri("http://localhost:8081/order/place").retrieve().bodyToMono(String.class);
-        Mono<String> stock = client.get().uri("http://localhost:8083/stock/check").retrieve().bodyToMono(String.class);
+        return Mono.zip(orders(), stock(), (o, s) -> "📊 Dashboard → " + o + " | " + s);
+    }
 
-        return Mono.zip(orders, stock, (o, s) -> "📊 Dashboard → " + o + " | " + s);
+    // Clients (or the gateway) send "Accept: application/cbor" to get the compact encoding; anything else gets JSON.
+    // Encoded here because WebFlux's Jackson2CborEncoder can't encode a Mono ("Does not support stream encoding").
+    // The order/stock backends only return short text, so those hops stay plain strings.
+    @GetMapping(value = "/summary/data", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    Mono<ResponseEntity<byte[]>> summaryData(@RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = "*/*") String accept) {
+        boolean cbor = prefersCbor(MediaType.parseMediaTypes(accept));
+        return Mono.zip(orders(), stock(), Summary::new).map(summary -> ResponseEntity.ok()
+            .contentType(cbor ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON)
+            .varyBy(HttpHeaders.ACCEPT)
+            .body(encode(cbor ? CBOR : JSON, summary)));
     }
+
+    // Same rule as UserApplication: only an explicit application/cbor ranked above application/json
+    static boolean prefersCbor(List<MediaType> accepted) {
+        double cbor = 0, json = 0;
+        for (MediaType t : accepted) {
+            if (t.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) cbor = Math.max(cbor, t.getQualityValue());
+            else if (t.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) json = Math.max(json, t.getQualityValue());
+        }
+        return cbor > json;
+    }
+
+    static byte[] encode(ObjectMapper mapper, Object value) {
+        try { return mapper.writeValueAsBytes(value); }
+        catch (Exception e) { throw new IllegalStateException(e); }
+    }
+
+    Mono<String> orders() { return client.get().uri("http://localhost:8081/order/place").retrieve().bodyToMono(String.class); }
+    Mono<String> stock()  { return client.get().uri("http://localhost:8083/stock/check").retrieve().bodyToMono(String.class); }
 }
 
 
@@ -219,26 +535,28 @@ import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
 import org.springframework.web.bind.annotation.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 @SpringBootApplication
 @RestController
 public class GatewayApp {
-    Map<String, Integer> requestCount = new HashMap<>();
-    Map<String, Long> timestamp = new HashMap<>();
+    record Window(long start, int count) {}
+    Map<String, AtomicReference<Window>> windows = new ConcurrentHashMap<>();
     static final int LIMIT = 3, WINDOW_MS = 5000;
 
     public static void main(String[] args){ SpringApplication.run(GatewayApp.class,args); }
 
+    // No monitors on the hot path: the map is only locked the first time a user shows up,
+    // after that a plain get + CAS, so a hammering user can't pin virtual threads
     @GetMapping("/api/{user}")
-    synchronized String handle(@PathVariable String user){
+    String handle(@PathVariable String user){
         long now = System.currentTimeMillis();
-        timestamp.putIfAbsent(user, now);
-        if (now - timestamp.get(user) > WINDOW_MS) {
-            timestamp.put(user, now);
-            requestCount.put(user, 0);
-        }
-        requestCount.put(user, requestCount.getOrDefault(user, 0) + 1);
-        return (requestCount.get(user) > LIMIT) ?
+        AtomicReference<Window> ref = windows.get(user);
+        if (ref == null) ref = windows.computeIfAbsent(user, u -> new AtomicReference<>());
+        Window w = ref.updateAndGet(old -> (old == null || now - old.start() > WINDOW_MS)
+            ? new Window(now, 1) : new Window(old.start(), old.count() + 1));
+        return (w.count() > LIMIT) ?
             "🚫 Too Many Requests, please wait." : "✅ Request Served for " + user;
     }
 }
@@ -342,6 +660,12 @@ spring:
           filters:
             - RewritePath=/users/(?<segment>.*), /${segment}
 
+        # Accept header is forwarded as-is, so CBOR negotiation works end to end
+        - id: dashboard_service
+          uri: http://localhost:8088
+          predicates:
+            - Path=/dashboard/**
+
       default-filters:
         - AddResponseHeader=X-Gateway,SpringCloudGateway
 
@@ -404,19 +728,107 @@ public class FallbackController {
 
 //Order Service (Port 8081)
 package com.example.order;
+import com.example.common.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
-import java.util.*;
+import org.springframework.web.server.ResponseStatusException;
+import java.io.IOException;
 
 @SpringBootApplication
 @RestController
 public class OrderApplication {
+    final OrderIdGenerator ids;
+    final IdempotencyStore store;
+    // No default on purpose: two nodes silently sharing node 0 would hand out colliding ids
+    OrderApplication(@Value("${order.node-id}") int nodeId, @Value("${idempotency.spill-file:}") String spillFile) throws IOException {
+        ids = new OrderIdGenerator(nodeId);
+        store = new IdempotencyStore(10_000, 10 * 60_000, 30_000, spillFile);
+    }
     public static void main(String[] args){ SpringApplication.run(OrderApplication.class, args); }
 
+    // A retried create with the same Idempotency-Key returns the same order id
     @GetMapping("/create")
-    public String createOrder() {
-        return "🛒 Order Created Successfully! Order ID: " + new Random().nextInt(10000);
+    public String createOrder(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String key) {
+        return store.execute(key, () -> "🛒 Order Created Successfully! Order ID: " + ids.nextId());
+    }
+
+    // Batch clients reserve a block once and derive the ids locally: first + i * step
+    @GetMapping("/ids/reserve")
+    public OrderIdGenerator.IdBlock reserveIds(@RequestParam(defaultValue = "1000") int count) {
+        if (count < 1 || count > OrderIdGenerator.MAX_BLOCK)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "count must be 1.." + OrderIdGenerator.MAX_BLOCK);
+        return ids.reserve(count);
+    }
+}
+
+//OrderIdGenerator.java — Snowflake-style, lock-free
+package com.example.order;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*64-bit id = 41 bits ms since EPOCH | 12 bits sequence | 10 bits node.
+The node sits in the low bits so consecutive (time, sequence) values map to an arithmetic
+sequence of ids, which is what makes a reserved block just (first, count, step).
+One AtomicLong holds the last issued (time << 12 | sequence); a CAS moves it forward, so
+sequence rollover simply carries into the next millisecond and ids stay monotonic.*/
+public class OrderIdGenerator {
+    static final long EPOCH = 1735689600000L;          // 2025-01-01T00:00:00Z
+    static final int NODE_BITS = 10, SEQ_BITS = 12;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1, MAX_SKEW_MS = 1000;
+    public static final int MAX_BLOCK = 1 << SEQ_BITS;
+
+    public record IdBlock(long first, int count, long step) {}
+
+    final long node;
+    final AtomicLong last = new AtomicLong();
+
+    public OrderIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("node id must be 0.." + MAX_NODE);
+        this.node = node;
+    }
+
+    public long nextId() { return toId(advance(1)); }
+
+    public IdBlock reserve(int count) {
+        if (count < 1 || count > MAX_BLOCK) throw new IllegalArgumentException("count must be 1.." + MAX_BLOCK);
+        return new IdBlock(toId(advance(count)), count, 1L << NODE_BITS);
+    }
+
+    long toId(long state) { return state << NODE_BITS | node; }
+
+    // Claims `count` consecutive states and returns the first one
+    long advance(int count) {
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH;
+            long prev = last.get();
+            long first = Math.max(now << SEQ_BITS, prev + 1);
+            long end = first + count - 1;
+            long ahead = (end >>> SEQ_BITS) - now;      // >0 after sequence rollover or a backwards clock step
+            if (ahead > MAX_SKEW_MS) throw new IllegalStateException("Clock moved backwards by " + ahead + " ms");
+            if (ahead > 1) { LockSupport.parkNanos((ahead - 1) * 1_000_000); continue; }    // clock stepped back: sleep, don't burn a core
+            if (ahead > 0) { Thread.onSpinWait(); continue; }                                // rollover: the next ms is under 1 ms away
+            if (last.compareAndSet(prev, end)) return first;
+        }
+    }
+}
+
+//IdGenBench — ids/second for one node
+package com.example.order;
+import java.util.concurrent.*;
+
+public class IdGenBench {
+    public static void main(String[] args) throws Exception {
+        OrderIdGenerator gen = new OrderIdGenerator(1);
+        int threads = Runtime.getRuntime().availableProcessors(), perThread = 2_000_000;
+        long start = System.nanoTime();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) pool.submit(() -> { for (int i = 0; i < perThread; i++) gen.nextId(); });
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d threads: %.1f M ids/s%n", threads, threads * perThread / secs / 1e6);
     }
 }
 
@@ -443,20 +855,210 @@ public class PaymentApplication {
 }
 
 //User Service (Port 8083)
+//Dependencies pom.xml (User Service)
+<dependency>
+  <groupId>com.fasterxml.jackson.dataformat</groupId>
+  <artifactId>jackson-dataformat-cbor</artifactId>
+</dependency>
+
 package com.example.user;
 import org.springframework.boot.*;
 import org.springframework.boot.autoconfigure.*;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
-import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import java.util.*;
 
 @SpringBootApplication
 @RestController
 public class UserApplication {
+    static final Map<String, String> PROFILE = Map.of("name", "Rishabh", "role", "Customer", "membership", "Gold");
+    // The profile never changes, so serialize it once instead of running Jackson on every request
+    static final byte[] PROFILE_JSON = encode(new ObjectMapper()), PROFILE_CBOR = encode(new CBORMapper());
+
     public static void main(String[] args){ SpringApplication.run(UserApplication.class, args); }
 
-    @GetMapping("/profile")
-    public Map<String, String> getUserProfile() {
-        return Map.of("name", "Rishabh", "role", "Customer", "membership", "Gold");
+    // Spring MVC answers 406 when neither type is acceptable; CBOR only goes to clients that name it
+    @GetMapping(value = "/profile", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<byte[]> getUserProfile(@RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = "*/*") String accept) {
+        boolean cbor = prefersCbor(MediaType.parseMediaTypes(accept));
+        return ResponseEntity.ok()
+            .contentType(cbor ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON)
+            .varyBy(HttpHeaders.ACCEPT)
+            .body(cbor ? PROFILE_CBOR : PROFILE_JSON);
+    }
+
+    // True only for an explicit application/cbor (q > 0) ranked above any explicit application/json;
+    // wildcards like */*;q=0.8 from browsers and curl never select CBOR
+    static boolean prefersCbor(List<MediaType> accepted) {
+        double cbor = 0, json = 0;
+        for (MediaType t : accepted) {
+            if (t.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) cbor = Math.max(cbor, t.getQualityValue());
+            else if (t.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) json = Math.max(json, t.getQualityValue());
+        }
+        return cbor > json;
+    }
+
+    static byte[] encode(ObjectMapper mapper) {
+        try { return mapper.writeValueAsBytes(PROFILE); }
+        catch (Exception e) { throw new IllegalStateException(e); }
+    }
+}
+
+
+//Fast Startup Profile (Spring AOT + CDS)
+/*Scenario
+Many small services get restarted and scaled out all the time, so JVM + Spring startup dominates.
+Spring AOT pre-computes the bean definitions at build time, and a CDS archive (trained once per app)
+lets the JVM map already-parsed classes instead of loading them from the jar again.*/
+//pom.xml (add to every service: OrderApp, PaymentApp, GatewayApplication, ...)
+<profiles>
+  <profile>
+    <id>fast-startup</id>
+    <build>
+      <plugins>
+        <plugin>
+          <groupId>org.springframework.boot</groupId>
+          <artifactId>spring-boot-maven-plugin</artifactId>
+          <executions>
+            <execution>
+              <id>process-aot</id>
+              <goals><goal>process-aot</goal></goals>
+            </execution>
+          </executions>
+        </plugin>
+      </plugins>
+    </build>
+  </profile>
+</profiles>
+
+//Build, train the CDS archive once, then run (example: order-service)
+//Each service gets its own directory: the archive only works with the exact classpath it was trained on.
+mvn -Pfast-startup package
+java -Djarmode=tools -jar target/order-service.jar extract --destination app/order-service
+java -XX:ArchiveClassesAtExit=app/order-service/order-service.jsa -Dspring.aot.enabled=true -Dspring.context.exit=onRefresh -jar app/order-service/order-service.jar
+java -XX:SharedArchiveFile=app/order-service/order-service.jsa -Xshare:on -Dspring.aot.enabled=true -jar app/order-service/order-service.jar
+
+//Startup Benchmark — time to first successful request + resident memory (RSS)
+//Usage: java StartupBench.java [--fast] app/user-service/user-service.jar:8083:/profile app/payment-service/payment-service.jar:8086:/payment/pay ...
+//--fast expects <jar-stem>.jsa next to each jar; -Xshare:on makes a missing or mismatched archive a startup failure, not a silent fallback.
+//Pick endpoints that always answer 2xx (not /payment/process or /stock/check, which fail at random).
+package com.example.bench;
+import java.net.URI;
+import java.net.http.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+
+public class StartupBench {
+    static final HttpClient http = HttpClient.newHttpClient();
+    static final long STARTUP_TIMEOUT_MS = 120_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean fast = args.length > 0 && args[0].equals("--fast");
+        System.out.printf("%-40s %10s %10s%n", "service", "ready(ms)", "rss(MB)");
+        int failures = 0;
+        for (String arg : Arrays.copyOfRange(args, fast ? 1 : 0, args.length)) {
+            String[] p = arg.split(":");          // jar:port:path
+            String jar = p[0], url = "http://localhost:" + p[1] + p[2];
+            List<String> cmd = new ArrayList<>(List.of("java"));
+            if (fast) cmd.addAll(List.of("-XX:SharedArchiveFile=" + archiveFor(jar), "-Xshare:on", "-Dspring.aot.enabled=true"));
+            cmd.addAll(List.of("-jar", jar));
+
+            long start = System.nanoTime();
+            Process proc = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            try {
+                long readyMs;
+                while (!served(url)) {
+                    readyMs = (System.nanoTime() - start) / 1_000_000;
+                    if (!proc.isAlive() || readyMs > STARTUP_TIMEOUT_MS) break;
+                    Thread.sleep(10);
+                }
+                readyMs = (System.nanoTime() - start) / 1_000_000;
+                if (!proc.isAlive()) {
+                    System.out.printf("%-40s FAILED: exited with code %d%n", jar, proc.exitValue());
+                    failures++;
+                } else if (readyMs > STARTUP_TIMEOUT_MS) {
+                    System.out.printf("%-40s FAILED: no 2xx from %s within %d ms%n", jar, url, STARTUP_TIMEOUT_MS);
+                    failures++;
+                } else {
+                    System.out.printf("%-40s %10d %10d%n", jar, readyMs, rssKb(proc.pid()) / 1024);
+                }
+            } finally {
+                proc.destroy();
+                proc.waitFor();
+            }
+        }
+        if (failures > 0) System.exit(1);
+    }
+
+    // app/order-service/order-service.jar -> app/order-service/order-service.jsa
+    static Path archiveFor(String jar) {
+        String name = Path.of(jar).getFileName().toString();
+        return Path.of(jar).resolveSibling(name.replaceFirst("\\.jar$", "") + ".jsa");
+    }
+
+    static boolean served(String url) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url)).header("X-API-KEY", "bench").timeout(Duration.ofSeconds(2)).build();
+            return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+        } catch (Exception e) { return false; }    // not listening yet
+    }
+
+    // Linux only: VmRSS line of /proc/<pid>/status, in kB
+    static long rssKb(long pid) throws Exception {
+        return Files.readAllLines(Path.of("/proc/" + pid + "/status")).stream()
+            .filter(l -> l.startsWith("VmRSS:"))
+            .mapToLong(l -> Long.parseLong(l.replaceAll("\\D", "")))
+            .findFirst().orElse(-1);
+    }
+}
+
+
+//Virtual Threads Mode (opt-in, Java 21+)
+/*Scenario
+OrderApp, ProductApp, BookingApp and StockApp block on RestTemplate calls, so a slow downstream
+fills Tomcat's ~200 platform threads. With virtual threads every request gets its own cheap thread:
+the blocking RestTemplate call and the @Retryable backoff (Thread.sleep) just unmount it from its carrier.
+GatewayApp (the servlet rate limiter) opts in too; its handler takes no monitor, so nothing pins.*/
+//application.properties (OrderApp, ProductApp, BookingApp, StockApp, GatewayApp)
+spring.threads.virtual.enabled=true
+
+//Concurrency Benchmark — ProductApp's retry backoff (1s) makes /product/fetch a slow endpoint
+//Usage: java ConcurrencyBench.java http://localhost:8084/product/fetch 2000 30
+//Run once with and once without spring.threads.virtual.enabled and compare req/s.
+package com.example.bench;
+import java.net.URI;
+import java.net.http.*;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class ConcurrencyBench {
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(args[0]);
+        int clients = Integer.parseInt(args[1]);
+        long deadline = System.nanoTime() + Duration.ofSeconds(Long.parseLong(args[2])).toNanos();
+        HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        LongAdder ok = new LongAdder(), failed = new LongAdder();
+        long start = System.nanoTime();
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        HttpRequest req = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).build();    // a hung endpoint can't stall the run
+                        int code = http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (System.nanoTime() < deadline) (code / 100 == 2 ? ok : failed).increment();    // late completions don't count
+                    } catch (Exception e) { if (System.nanoTime() < deadline) failed.increment(); }
+                }
+                return null;
+            });
+        }
+        double secs = (Math.min(System.nanoTime(), deadline) - start) / 1e9;
+        System.out.printf("clients=%d ok=%d failed=%d throughput=%.1f req/s%n",
+            clients, ok.sum(), failed.sum(), ok.sum() / secs);
     }
 }
 